@@ -33,6 +33,17 @@ val run by tasks.getting(JavaExec::class) {
     standardInput = System.`in`
 }
 
+val stress by tasks.registering(JavaExec::class) {
+    group = "application"
+    description = "Runs the YCSB-style load generator, pass options via -Pargs=\"--workload=A --threads=4\""
+    classpath = sourceSets["main"].runtimeClasspath
+    main = "ru.mail.polis.LoadGenerator"
+    maxHeapSize = "128m"
+    if (project.hasProperty("args")) {
+        args = (project.property("args") as String).split(" ")
+    }
+}
+
 tasks {
     test {
         maxHeapSize = "128m"
@@ -0,0 +1,50 @@
+package ru.mail.polis;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Storage able to export consistent snapshots of itself.
+ *
+ * <p>A checkpoint is taken in two steps: {@link #seal()} freezes the current state cheaply
+ * and {@link Checkpoint#export} does the heavy lifting without blocking the writers,
+ * so composite storages may hold writers out around the first step only.
+ */
+public interface Checkpointable {
+    /**
+     * Freeze the current state of the storage, e.g. by switching writes to a fresh memtable
+     * and pinning the current tables. Must not do any I/O proportional to the data size.
+     */
+    @NotNull
+    Checkpoint seal() throws IOException;
+
+    /**
+     * Export a consistent snapshot of the storage into the {@code target} folder.
+     *
+     * @param target nonexistent or empty folder on the same file system as the data
+     * @throws IllegalArgumentException if the {@code target} is not empty
+     */
+    default void checkpoint(@NotNull final File target) throws IOException {
+        try (Checkpoint checkpoint = seal()) {
+            checkpoint.export(target);
+        }
+    }
+
+    /**
+     * State frozen by {@link #seal()}, kept until closed.
+     */
+    interface Checkpoint extends Closeable {
+        /**
+         * Flush the sealed memtable and hard link the immutable tables together with
+         * the manifest (see {@link Files#hardLinkTree}) into the {@code target} folder.
+         * The snapshot is a valid data folder to be opened with {@link DAOFactory}.
+         *
+         * @param target nonexistent or empty folder on the same file system as the data
+         * @throws IllegalArgumentException if the {@code target} is not empty
+         */
+        void export(@NotNull File target) throws IOException;
+    }
+}
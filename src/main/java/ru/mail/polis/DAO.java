@@ -22,7 +22,9 @@ import org.jetbrains.annotations.Nullable;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -53,6 +55,39 @@ public interface DAO extends Closeable {
         return Iters.until(iterator(from), bound);
     }
 
+    /**
+     * Get {@link Iterator} of {@link Record}s with keys starting with {@code prefix}.
+     *
+     * <p>Implementations may consult per-table {@link PrefixFilter}s to skip the tables
+     * which can't contain the prefix.
+     */
+    @NotNull
+    default Iterator<Record> prefixScan(@NotNull ByteBuffer prefix) throws IOException {
+        return range(prefix, prefixUpperBound(prefix));
+    }
+
+    /**
+     * Get the least key greater than all the keys starting with {@code prefix}
+     * or {@code null} if there is no such key.
+     */
+    @Nullable
+    private static ByteBuffer prefixUpperBound(@NotNull final ByteBuffer prefix) {
+        // ByteBuffer compares bytes as signed values
+        for (int i = prefix.limit() - 1; i >= prefix.position(); i--) {
+            final byte b = prefix.get(i);
+            if (b != Byte.MAX_VALUE) {
+                final ByteBuffer result = ByteBuffer.allocate(i - prefix.position() + 1);
+                final ByteBuffer head = prefix.duplicate();
+                head.limit(i);
+                result.put(head);
+                result.put((byte) (b + 1));
+                result.rewind();
+                return result;
+            }
+        }
+        return null;
+    }
+
     /**
      * Get value for the {@code key} or {@link NoSuchElementException} if no value present.
      */
@@ -77,6 +112,54 @@ public interface DAO extends Closeable {
 
     void remove(@NotNull ByteBuffer key) throws IOException;
 
+    /**
+     * Remove all the keys between {@code from} inclusive and {@code to} exclusive.
+     *
+     * <p>Implementations are expected to record a single range tombstone honored by reads
+     * and used by compaction to drop the covered data wholesale.
+     * The default implementation falls back to {@link #remove} of every key in batches.
+     */
+    default void removeRange(
+            @NotNull ByteBuffer from,
+            @Nullable ByteBuffer to) throws IOException {
+        final int batchSize = 1024;
+        final List<ByteBuffer> batch = new ArrayList<>(batchSize);
+        ByteBuffer start = from;
+        while (true) {
+            final Iterator<Record> iter = range(start, to);
+            while (batch.size() < batchSize && iter.hasNext()) {
+                batch.add(iter.next().getKey());
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            for (final ByteBuffer key : batch) {
+                remove(key);
+            }
+            start = batch.get(batch.size() - 1);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Load {@link Record}s with strictly ascending keys into the storage.
+     *
+     * <p>Implementations are expected to stream the records straight into new tables
+     * with bounded memory bypassing the memtable and the log, and to make them visible atomically.
+     * The default implementation falls back to {@link #upsert} of every record and is not atomic:
+     * the records preceding a failure, e.g. the first out of order key, stay in the storage.
+     *
+     * @throws IllegalArgumentException if the keys are not strictly ascending
+     */
+    default void bulkLoad(@NotNull Iterator<Record> records) throws IOException {
+        final Iterator<Record> iter = Iters.ascending(records);
+        while (iter.hasNext()) {
+            final Record record = iter.next();
+            upsert(record.getKey(), record.getValue());
+        }
+    }
+
     default void compact() throws IOException {
         // Implement me when you get to stage 3
     }
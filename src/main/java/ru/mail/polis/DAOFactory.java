@@ -20,6 +20,8 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 /**
  * Custom {@link DAO} factory.
@@ -28,19 +30,14 @@ import java.io.IOException;
  */
 public final class DAOFactory {
     static final long MAX_HEAP = 128 * 1024 * 1024;
+    static final String SHARD_PREFIX = "shard-";
+    static final String SHARDS_MARKER = "SHARDS";
 
     private DAOFactory() {
         // Not instantiatable
     }
 
-    /**
-     * Construct a {@link DAO} instance.
-     *
-     * @param data local disk folder to persist the data to
-     * @return a storage instance
-     */
-    @NotNull
-    static DAO create(@NotNull final File data) throws IOException {
+    private static void check(@NotNull final File data) {
         if (Runtime.getRuntime().maxMemory() > MAX_HEAP) {
             throw new IllegalStateException("The heap is too big. Consider setting Xmx.");
         }
@@ -52,8 +49,116 @@ public final class DAOFactory {
         if (!data.isDirectory()) {
             throw new IllegalArgumentException("Path is not a directory: " + data);
         }
+    }
+
+    /**
+     * Construct a {@link DAO} instance.
+     *
+     * @param data local disk folder to persist the data to
+     * @return a storage instance
+     */
+    @NotNull
+    static DAO create(@NotNull final File data) throws IOException {
+        check(data);
+
+        if (new File(data, SHARDS_MARKER).exists()) {
+            throw new IllegalArgumentException("Path contains a sharded storage: " + data);
+        }
 
         // TODO: Implement me
         throw new UnsupportedOperationException("Implement me!");
     }
+
+    /**
+     * Construct a {@link DAO} instance partitioning keys across {@code shards} independent storages.
+     *
+     * <p>The shard count determines where every key lives, so it is persisted on creation
+     * and the storage can't be reopened with a different one.
+     *
+     * @param data   local disk folder to persist the data to, each shard gets its own subfolder
+     * @param shards number of partitions
+     * @return a storage instance
+     */
+    @NotNull
+    static DAO create(
+            @NotNull final File data,
+            final int shards) throws IOException {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("Non-positive shard count: " + shards);
+        }
+
+        check(data);
+
+        final Path marker = new File(data, SHARDS_MARKER).toPath();
+        final boolean exists = java.nio.file.Files.exists(marker);
+        if (exists) {
+            final int stored = Integer.parseInt(java.nio.file.Files.readString(marker).trim());
+            if (stored != shards) {
+                throw new IllegalArgumentException(
+                        "Storage has " + stored + " shards, not " + shards + ": " + data);
+            }
+            for (int i = 0; i < shards; i++) {
+                final File shard = new File(data, SHARD_PREFIX + i);
+                if (!shard.isDirectory()) {
+                    throw new IllegalArgumentException("Storage misses shard: " + shard);
+                }
+            }
+        } else {
+            final String[] files = data.list();
+            if (files == null) {
+                throw new IOException("Can't list directory: " + data);
+            }
+            if (files.length > 0) {
+                throw new IllegalArgumentException("Path contains a non-sharded storage: " + data);
+            }
+        }
+
+        final DAO[] daos = new DAO[shards];
+        try {
+            for (int i = 0; i < shards; i++) {
+                final File shard = new File(data, SHARD_PREFIX + i);
+                if (!shard.exists() && !shard.mkdir()) {
+                    throw new IOException("Can't create directory: " + shard);
+                }
+                daos[i] = create(shard);
+            }
+
+            // The marker goes last, so a storage failed to be created is not taken for a valid one
+            if (!exists) {
+                writeShardsMarker(data, shards);
+            }
+        } catch (IOException | RuntimeException e) {
+            for (final DAO dao : daos) {
+                if (dao != null) {
+                    try {
+                        dao.close();
+                    } catch (IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                }
+            }
+            if (!exists) {
+                for (int i = 0; i < shards; i++) {
+                    final File shard = new File(data, SHARD_PREFIX + i);
+                    if (shard.exists()) {
+                        try {
+                            Files.recursiveDelete(shard);
+                        } catch (IOException suppressed) {
+                            e.addSuppressed(suppressed);
+                        }
+                    }
+                }
+            }
+            throw e;
+        }
+        return new ShardedDAO(daos);
+    }
+
+    static void writeShardsMarker(
+            @NotNull final File data,
+            final int shards) throws IOException {
+        final Path tmp = new File(data, SHARDS_MARKER + ".tmp").toPath();
+        java.nio.file.Files.writeString(tmp, Integer.toString(shards));
+        java.nio.file.Files.move(tmp, new File(data, SHARDS_MARKER).toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
 }
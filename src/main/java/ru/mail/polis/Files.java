@@ -25,6 +25,7 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 /**
  * Utility methods for handling files.
@@ -75,4 +76,66 @@ final class Files {
                 });
         return result.get();
     }
+
+    /**
+     * Check that the {@code path} either doesn't exist or is an empty folder.
+     *
+     * @throws IllegalArgumentException otherwise
+     */
+    static void requireEmpty(@NotNull final File path) throws IOException {
+        if (!path.exists()) {
+            return;
+        }
+
+        if (!path.isDirectory()) {
+            throw new IllegalArgumentException("Path is not a directory: " + path);
+        }
+
+        final String[] files = path.list();
+        if (files == null) {
+            throw new IOException("Can't list directory: " + path);
+        }
+        if (files.length > 0) {
+            throw new IllegalArgumentException("Directory is not empty: " + path);
+        }
+    }
+
+    /**
+     * Mirror the {@code source} folder in {@code target} hard linking every file accepted by {@code filter}.
+     * Takes time proportional to the file count and not to the data size.
+     *
+     * @param target nonexistent or empty folder on the same file system as the {@code source}
+     */
+    static void hardLinkTree(
+            @NotNull final File source,
+            @NotNull final File target,
+            @NotNull final Predicate<Path> filter) throws IOException {
+        requireEmpty(target);
+
+        final Path from = source.toPath();
+        final Path to = target.toPath();
+        java.nio.file.Files.walkFileTree(
+                from,
+                new SimpleFileVisitor<>() {
+                    @NotNull
+                    @Override
+                    public FileVisitResult preVisitDirectory(
+                            @NotNull final Path dir,
+                            @NotNull final BasicFileAttributes attrs) throws IOException {
+                        java.nio.file.Files.createDirectories(to.resolve(from.relativize(dir)));
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @NotNull
+                    @Override
+                    public FileVisitResult visitFile(
+                            @NotNull final Path file,
+                            @NotNull final BasicFileAttributes attrs) throws IOException {
+                        if (attrs.isRegularFile() && filter.test(file)) {
+                            java.nio.file.Files.createLink(to.resolve(from.relativize(file)), file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+    }
 }
@@ -51,6 +51,10 @@ public final class Iters {
         return new CollapseEqualsIterator<>(iter);
     }
 
+    public static <E extends Comparable<E>> Iterator<E> ascending(@NotNull final Iterator<E> iter) {
+        return new AscendingIterator<>(iter);
+    }
+
     private static class UntilIterator<E extends Comparable<E>> implements Iterator<E> {
         private final Iterator<E> iter;
         private final E until;
@@ -80,6 +84,31 @@ public final class Iters {
         }
     }
 
+    private static class AscendingIterator<E extends Comparable<E>> implements Iterator<E> {
+        private final Iterator<E> iter;
+
+        private E prev;
+
+        AscendingIterator(@NotNull final Iterator<E> iter) {
+            this.iter = iter;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iter.hasNext();
+        }
+
+        @Override
+        public E next() {
+            final E result = iter.next();
+            if (prev != null && prev.compareTo(result) >= 0) {
+                throw new IllegalArgumentException("Elements are not strictly ascending");
+            }
+            this.prev = result;
+            return result;
+        }
+    }
+
     private static class CollapseEqualsIterator<E> implements Iterator<E> {
         private final Iterator<E> iter;
         private final Function<E, ?> keyExtractor;
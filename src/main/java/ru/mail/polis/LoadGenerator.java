@@ -0,0 +1,552 @@
+package ru.mail.polis;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * YCSB-style load generator for {@link DAO}.
+ *
+ * <p>Loads {@code records} keys into a temporary storage, then runs the chosen workload
+ * from several threads reporting throughput and latency percentiles every interval.
+ * Optionally triggers {@link DAO#compact()} periodically to observe its impact.
+ *
+ * <p>Options are passed as {@code --name=value}:
+ * <ul>
+ * <li>{@code workload} -- one of {@code A}..{@code F}, {@code A} by default</li>
+ * <li>{@code threads} -- worker thread count, {@code 4} by default</li>
+ * <li>{@code records} -- keys to load before the run, {@code 100000} by default</li>
+ * <li>{@code duration} -- run duration in seconds, {@code 60} by default</li>
+ * <li>{@code distribution} -- {@code uniform}, {@code zipfian} or {@code latest},
+ * workload default if omitted</li>
+ * <li>{@code value-size} -- value size in bytes, {@code 100} by default</li>
+ * <li>{@code shards} -- storage partitions, {@code 1} by default</li>
+ * <li>{@code report} -- report interval in seconds, {@code 1} by default</li>
+ * <li>{@code compact} -- compaction interval in seconds, {@code 0} to disable (default)</li>
+ * </ul>
+ */
+public final class LoadGenerator {
+    private static final Logger log = LoggerFactory.getLogger(LoadGenerator.class);
+    private static final int MAX_SCAN_LENGTH = 100;
+
+    private final DAO dao;
+    private final Workload workload;
+    private final Distribution distribution;
+    private final int valueSize;
+    private final AtomicLong inserted;
+    private final Zipfian zipfian;
+    // Every worker records into its own histograms merged at report time
+    private final List<Recorder> recorders = new CopyOnWriteArrayList<>();
+    private final Map<Operation, long[]> total = counts();
+
+    private LoadGenerator(
+            @NotNull final DAO dao,
+            @NotNull final Workload workload,
+            @NotNull final Distribution distribution,
+            final int valueSize,
+            final long records) {
+        this.dao = dao;
+        this.workload = workload;
+        this.distribution = distribution;
+        this.valueSize = valueSize;
+        this.inserted = new AtomicLong(records);
+        this.zipfian = new Zipfian(records);
+    }
+
+    enum Operation {
+        READ, UPDATE, INSERT, SCAN, READ_MODIFY_WRITE
+    }
+
+    enum Distribution {
+        UNIFORM, ZIPFIAN, LATEST
+    }
+
+    /**
+     * Standard YCSB core workloads.
+     */
+    enum Workload {
+        /** Update heavy. */
+        A(Distribution.ZIPFIAN, 50, 50, 0, 0, 0),
+        /** Read mostly. */
+        B(Distribution.ZIPFIAN, 95, 5, 0, 0, 0),
+        /** Read only. */
+        C(Distribution.ZIPFIAN, 100, 0, 0, 0, 0),
+        /** Read latest. */
+        D(Distribution.LATEST, 95, 0, 5, 0, 0),
+        /** Short ranges. */
+        E(Distribution.ZIPFIAN, 0, 0, 5, 95, 0),
+        /** Read-modify-write. */
+        F(Distribution.ZIPFIAN, 50, 0, 0, 0, 50);
+
+        final Distribution distribution;
+        private final int[] thresholds;
+
+        Workload(
+                @NotNull final Distribution distribution,
+                final int read,
+                final int update,
+                final int insert,
+                final int scan,
+                final int readModifyWrite) {
+            assert read + update + insert + scan + readModifyWrite == 100;
+            this.distribution = distribution;
+            this.thresholds = new int[]{
+                    read,
+                    read + update,
+                    read + update + insert,
+                    read + update + insert + scan,
+                    100};
+        }
+
+        @NotNull
+        Operation next() {
+            final int percent = ThreadLocalRandom.current().nextInt(100);
+            for (int i = 0; i < thresholds.length; i++) {
+                if (percent < thresholds[i]) {
+                    return Operation.values()[i];
+                }
+            }
+            throw new AssertionError("Unreachable");
+        }
+    }
+
+    @NotNull
+    private static ByteBuffer key(final long index) {
+        // FNV-1a spreads sequential indices over the key space
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash ^= (index >>> (i * Byte.SIZE)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return ByteBuffer.allocate(Long.BYTES).putLong(0, hash);
+    }
+
+    @NotNull
+    private ByteBuffer value() {
+        final byte[] result = new byte[valueSize];
+        ThreadLocalRandom.current().nextBytes(result);
+        return ByteBuffer.wrap(result);
+    }
+
+    private long nextIndex() {
+        final long count = inserted.get();
+        switch (distribution) {
+            case UNIFORM:
+                return ThreadLocalRandom.current().nextLong(count);
+            case ZIPFIAN:
+                return Math.min(zipfian.next(), count - 1);
+            case LATEST:
+                return Math.max(0L, count - 1 - zipfian.next());
+            default:
+                throw new IllegalStateException("Unsupported distribution: " + distribution);
+        }
+    }
+
+    private void execute(@NotNull final Operation op) throws IOException {
+        switch (op) {
+            case READ:
+                read(key(nextIndex()));
+                break;
+
+            case UPDATE:
+                dao.upsert(key(nextIndex()), value());
+                break;
+
+            case INSERT:
+                dao.upsert(key(inserted.getAndIncrement()), value());
+                break;
+
+            case SCAN:
+                final int length = 1 + ThreadLocalRandom.current().nextInt(MAX_SCAN_LENGTH);
+                final Iterator<Record> iter = dao.iterator(key(nextIndex()));
+                for (int i = 0; i < length && iter.hasNext(); i++) {
+                    iter.next();
+                }
+                break;
+
+            case READ_MODIFY_WRITE:
+                final ByteBuffer key = key(nextIndex());
+                read(key);
+                dao.upsert(key, value());
+                break;
+
+            default:
+                throw new IllegalStateException("Unsupported operation: " + op);
+        }
+    }
+
+    private void read(@NotNull final ByteBuffer key) throws IOException {
+        try {
+            dao.get(key);
+        } catch (NoSuchElementException e) {
+            // Removed or not yet inserted
+        }
+    }
+
+    @NotNull
+    private static Map<Operation, long[]> counts() {
+        final Map<Operation, long[]> result = new EnumMap<>(Operation.class);
+        for (final Operation op : Operation.values()) {
+            result.put(op, new long[Histogram.BUCKETS]);
+        }
+        return result;
+    }
+
+    /**
+     * Drain the histograms of all the workers into a single set of counts.
+     */
+    @NotNull
+    private Map<Operation, long[]> drain() {
+        final Map<Operation, long[]> result = counts();
+        for (final Recorder recorder : recorders) {
+            recorder.drainTo(result);
+        }
+        return result;
+    }
+
+    private static void add(
+            @NotNull final Map<Operation, long[]> target,
+            @NotNull final Map<Operation, long[]> counts) {
+        for (final Map.Entry<Operation, long[]> entry : counts.entrySet()) {
+            Histogram.add(target.get(entry.getKey()), entry.getValue());
+        }
+    }
+
+    private void load(final long records) throws IOException {
+        final Recorder recorder = new Recorder();
+        final long start = System.nanoTime();
+        for (long i = 0; i < records; i++) {
+            final long opStart = System.nanoTime();
+            dao.upsert(key(i), value());
+            recorder.record(Operation.INSERT, System.nanoTime() - opStart);
+        }
+        final long elapsed = System.nanoTime() - start;
+        log.info("Loaded {} records in {} ms", records, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        final Map<Operation, long[]> counts = counts();
+        recorder.drainTo(counts);
+        report("load", counts, elapsed);
+    }
+
+    private void run(
+            final int threads,
+            final long durationSec,
+            final long reportSec,
+            final long compactSec) throws Exception {
+        final AtomicBoolean stop = new AtomicBoolean();
+        final ExecutorService workers = Executors.newFixedThreadPool(threads);
+        final Future<?>[] futures = new Future<?>[threads];
+        for (int i = 0; i < threads; i++) {
+            final Recorder recorder = new Recorder();
+            recorders.add(recorder);
+            futures[i] = workers.submit(() -> {
+                while (!stop.get()) {
+                    final Operation op = workload.next();
+                    final long start = System.nanoTime();
+                    execute(op);
+                    recorder.record(op, System.nanoTime() - start);
+                }
+                return null;
+            });
+        }
+
+        final ExecutorService compactor = Executors.newSingleThreadExecutor();
+        final long start = System.nanoTime();
+        long lastReport = start;
+        long lastCompaction = start;
+        // Cleared at the first report after the compaction is over, so it marks every interval it overlaps
+        Future<?> compaction = null;
+        try {
+            while (true) {
+                TimeUnit.SECONDS.sleep(reportSec);
+                final long now = System.nanoTime();
+
+                final Map<Operation, long[]> interval = drain();
+                add(total, interval);
+                final long elapsedSec = TimeUnit.NANOSECONDS.toSeconds(now - start);
+                report(
+                        String.format(Locale.ROOT, "%4ds%s", elapsedSec, compaction == null ? "" : " compacting"),
+                        interval,
+                        now - lastReport);
+                lastReport = now;
+
+                if (compaction != null && compaction.isDone()) {
+                    // Propagate compaction failures
+                    compaction.get();
+                    compaction = null;
+                }
+                if (compactSec > 0
+                        && compaction == null
+                        && now - lastCompaction >= TimeUnit.SECONDS.toNanos(compactSec)) {
+                    lastCompaction = now;
+                    compaction = compactor.submit(() -> {
+                        dao.compact();
+                        return null;
+                    });
+                }
+
+                if (elapsedSec >= durationSec || isAnyDone(futures)) {
+                    break;
+                }
+            }
+        } finally {
+            stop.set(true);
+            workers.shutdown();
+            compactor.shutdown();
+        }
+
+        // Propagate worker and compaction failures
+        for (final Future<?> future : futures) {
+            future.get();
+        }
+        if (compaction != null) {
+            compaction.get();
+        }
+        add(total, drain());
+        report("total", total, System.nanoTime() - start);
+    }
+
+    private static boolean isAnyDone(@NotNull final Future<?>... futures) {
+        for (final Future<?> future : futures) {
+            if (future.isDone()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void report(
+            @NotNull final String label,
+            @NotNull final Map<Operation, long[]> histograms,
+            final long nanos) {
+        final StringBuilder sb = new StringBuilder(label);
+        long ops = 0;
+        for (final Map.Entry<Operation, long[]> entry : histograms.entrySet()) {
+            final long[] counts = entry.getValue();
+            final long count = Histogram.count(counts);
+            if (count == 0) {
+                continue;
+            }
+
+            ops += count;
+            sb.append(String.format(
+                    Locale.ROOT,
+                    " | %s n=%d p50=%dus p99=%dus p999=%dus",
+                    entry.getKey(),
+                    count,
+                    Histogram.percentile(counts, 0.5),
+                    Histogram.percentile(counts, 0.99),
+                    Histogram.percentile(counts, 0.999)));
+        }
+        final double seconds = Math.max(nanos, 1L) / (double) TimeUnit.SECONDS.toNanos(1);
+        log.info(String.format(Locale.ROOT, "%s | %.0f ops/s", sb, ops / seconds));
+    }
+
+    @NotNull
+    private static String option(
+            @NotNull final String[] args,
+            @NotNull final String name,
+            @NotNull final String defaultValue) {
+        final String prefix = "--" + name + "=";
+        for (final String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final Workload workload = Workload.valueOf(option(args, "workload", "A").toUpperCase(Locale.ROOT));
+        final int threads = Integer.parseInt(option(args, "threads", "4"));
+        final long records = Long.parseLong(option(args, "records", "100000"));
+        final long duration = Long.parseLong(option(args, "duration", "60"));
+        final Distribution distribution = Distribution.valueOf(
+                option(args, "distribution", workload.distribution.name()).toUpperCase(Locale.ROOT));
+        final int valueSize = Integer.parseInt(option(args, "value-size", "100"));
+        final int shards = Integer.parseInt(option(args, "shards", "1"));
+        final long report = Long.parseLong(option(args, "report", "1"));
+        final long compact = Long.parseLong(option(args, "compact", "0"));
+        if (threads <= 0 || records <= 0 || duration <= 0 || valueSize < 0 || report <= 0 || compact < 0) {
+            throw new IllegalArgumentException("Invalid options");
+        }
+
+        final File data = java.nio.file.Files.createTempDirectory("lsm-load").toFile();
+        log.info(
+                "Running workload {} with {} threads, {} records, {} keys, {} byte values in {}",
+                workload, threads, records, distribution, valueSize, data);
+        try (DAO dao = shards == 1 ? DAOFactory.create(data) : DAOFactory.create(data, shards)) {
+            final LoadGenerator generator = new LoadGenerator(dao, workload, distribution, valueSize, records);
+            generator.load(records);
+            generator.run(threads, duration, report, compact);
+        } finally {
+            Files.recursiveDelete(data);
+        }
+    }
+
+    /**
+     * Zipfian generator over {@code [0, items)} favouring small values (Gray et al.).
+     */
+    static final class Zipfian {
+        private static final double THETA = 0.99;
+
+        private final long items;
+        private final double zetan;
+        private final double alpha;
+        private final double eta;
+
+        Zipfian(final long items) {
+            this.items = items;
+            this.zetan = zeta(items);
+            this.alpha = 1.0 / (1.0 - THETA);
+            this.eta = (1 - Math.pow(2.0 / items, 1 - THETA)) / (1 - zeta(2) / zetan);
+        }
+
+        private static double zeta(final long n) {
+            double sum = 0;
+            for (long i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, THETA);
+            }
+            return sum;
+        }
+
+        long next() {
+            final double u = ThreadLocalRandom.current().nextDouble();
+            final double uz = u * zetan;
+            if (uz < 1.0) {
+                return 0;
+            }
+            if (uz < 1.0 + Math.pow(0.5, THETA)) {
+                return 1;
+            }
+            return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+        }
+    }
+
+    /**
+     * Latency histograms of a single worker.
+     */
+    private static final class Recorder {
+        private final Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+
+        Recorder() {
+            for (final Operation op : Operation.values()) {
+                histograms.put(op, new Histogram());
+            }
+        }
+
+        void record(
+                @NotNull final Operation op,
+                final long nanos) {
+            histograms.get(op).record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+
+        void drainTo(@NotNull final Map<Operation, long[]> counts) {
+            for (final Map.Entry<Operation, Histogram> entry : histograms.entrySet()) {
+                Histogram.add(counts.get(entry.getKey()), entry.getValue().drain());
+            }
+        }
+    }
+
+    /**
+     * Log-linear latency histogram with ~3% precision.
+     * Meant for a single writer, but may be drained concurrently.
+     */
+    static final class Histogram {
+        private static final int LINEAR = 64;
+        private static final int SUB_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int MIN_MAGNITUDE = 6;
+        static final int BUCKETS = LINEAR + (Long.SIZE - 1 - MIN_MAGNITUDE) * SUB_BUCKETS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        static int index(final long value) {
+            if (value < LINEAR) {
+                return (int) Math.max(value, 0L);
+            }
+            final int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+            final int sub = (int) (value >>> (magnitude - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return LINEAR + (magnitude - MIN_MAGNITUDE) * SUB_BUCKETS + sub;
+        }
+
+        static long lowerBound(final int index) {
+            if (index < LINEAR) {
+                return index;
+            }
+            final int offset = index - LINEAR;
+            final int magnitude = offset / SUB_BUCKETS + MIN_MAGNITUDE;
+            return (long) (SUB_BUCKETS + offset % SUB_BUCKETS) << (magnitude - SUB_BITS);
+        }
+
+        void record(final long value) {
+            buckets.incrementAndGet(index(value));
+        }
+
+        @NotNull
+        long[] snapshot() {
+            final long[] result = new long[buckets.length()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = buckets.get(i);
+            }
+            return result;
+        }
+
+        @NotNull
+        long[] drain() {
+            final long[] result = new long[buckets.length()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = buckets.getAndSet(i, 0L);
+            }
+            return result;
+        }
+
+        static void add(
+                @NotNull final long[] target,
+                @NotNull final long[] counts) {
+            for (int i = 0; i < counts.length; i++) {
+                target[i] += counts[i];
+            }
+        }
+
+        static long count(@NotNull final long[] counts) {
+            long result = 0;
+            for (final long count : counts) {
+                result += count;
+            }
+            return result;
+        }
+
+        static long percentile(
+                @NotNull final long[] counts,
+                final double quantile) {
+            final long rank = (long) Math.ceil(quantile * count(counts));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    return lowerBound(i);
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ru.mail.polis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Extracts the prefix of a key to be indexed by a {@link PrefixFilter}.
+ *
+ * <p>Any key starting with a buffer having a prefix must have the same prefix,
+ * so a filter built over the keys may be probed with a prefix scan argument.
+ */
+public interface PrefixExtractor {
+    /**
+     * Get the prefix of the {@code key} or {@code null} if the key is out of the extractor domain.
+     */
+    @Nullable
+    ByteBuffer extract(@NotNull ByteBuffer key);
+
+    /**
+     * Get the kind and parameters of the extractor persisted along with {@link PrefixFilter}s.
+     * Extractors with equal descriptors must extract equal prefixes.
+     */
+    @NotNull
+    String descriptor();
+
+    /**
+     * Extract the first {@code length} bytes.
+     */
+    @NotNull
+    static PrefixExtractor fixedLength(final int length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("Non-positive length: " + length);
+        }
+
+        return new PrefixExtractor() {
+            @Nullable
+            @Override
+            public ByteBuffer extract(@NotNull final ByteBuffer key) {
+                if (key.remaining() < length) {
+                    return null;
+                }
+
+                final ByteBuffer result = key.duplicate();
+                result.limit(result.position() + length);
+                return result.slice();
+            }
+
+            @NotNull
+            @Override
+            public String descriptor() {
+                return "fixed:" + length;
+            }
+        };
+    }
+
+    /**
+     * Extract the bytes up to and including the {@code count}-th {@code delimiter},
+     * e.g. {@code tenant/} for {@code tenant/entity/id} with {@code '/'} and {@code 1}.
+     */
+    @NotNull
+    static PrefixExtractor delimited(
+            final byte delimiter,
+            final int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Non-positive count: " + count);
+        }
+
+        return new PrefixExtractor() {
+            @Nullable
+            @Override
+            public ByteBuffer extract(@NotNull final ByteBuffer key) {
+                int found = 0;
+                for (int i = key.position(); i < key.limit(); i++) {
+                    if (key.get(i) == delimiter && ++found == count) {
+                        final ByteBuffer result = key.duplicate();
+                        result.limit(i + 1);
+                        return result.slice();
+                    }
+                }
+                return null;
+            }
+
+            @NotNull
+            @Override
+            public String descriptor() {
+                return "delimited:" + (delimiter & 0xff) + ":" + count;
+            }
+        };
+    }
+}
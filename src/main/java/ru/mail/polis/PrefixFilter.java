@@ -0,0 +1,107 @@
+package ru.mail.polis;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.PrimitiveSink;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Bloom filter over the key prefixes of a single table.
+ *
+ * <p>Lets prefix scans skip the tables which definitely don't contain the prefix.
+ * Built while writing the table and persisted along with it.
+ */
+public final class PrefixFilter {
+    private final BloomFilter<ByteBuffer> filter;
+    private final PrefixExtractor extractor;
+
+    private PrefixFilter(
+            @NotNull final BloomFilter<ByteBuffer> filter,
+            @NotNull final PrefixExtractor extractor) {
+        this.filter = filter;
+        this.extractor = extractor;
+    }
+
+    /**
+     * Create an empty filter.
+     *
+     * @param extractor          extracts the indexed prefixes
+     * @param expectedInsertions expected number of distinct prefixes
+     * @param fpp                desired false positive probability
+     */
+    @NotNull
+    public static PrefixFilter create(
+            @NotNull final PrefixExtractor extractor,
+            final long expectedInsertions,
+            final double fpp) {
+        return new PrefixFilter(
+                BloomFilter.create(ByteBufferFunnel.INSTANCE, expectedInsertions, fpp),
+                extractor);
+    }
+
+    /**
+     * Read the filter written by {@link #writeTo}.
+     *
+     * @throws IllegalArgumentException if the filter was built with a different extractor
+     */
+    @NotNull
+    public static PrefixFilter readFrom(
+            @NotNull final InputStream in,
+            @NotNull final PrefixExtractor extractor) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        final String descriptor = data.readUTF();
+        if (!descriptor.equals(extractor.descriptor())) {
+            throw new IllegalArgumentException(
+                    "Filter is built with prefix extractor " + descriptor + ", not " + extractor.descriptor());
+        }
+
+        return new PrefixFilter(BloomFilter.readFrom(data, ByteBufferFunnel.INSTANCE), extractor);
+    }
+
+    /**
+     * Write the filter preceded by the extractor descriptor.
+     */
+    public void writeTo(@NotNull final OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeUTF(extractor.descriptor());
+        data.flush();
+        filter.writeTo(out);
+    }
+
+    /**
+     * Index the prefix of the {@code key} if any.
+     */
+    public void add(@NotNull final ByteBuffer key) {
+        final ByteBuffer prefix = extractor.extract(key);
+        if (prefix != null) {
+            filter.put(prefix);
+        }
+    }
+
+    /**
+     * Check whether the table might contain keys starting with the {@code prefix}.
+     * Prefixes shorter than the indexed ones can't be checked and always pass.
+     */
+    public boolean mightContain(@NotNull final ByteBuffer prefix) {
+        final ByteBuffer extracted = extractor.extract(prefix);
+        return extracted == null || filter.mightContain(extracted);
+    }
+
+    private enum ByteBufferFunnel implements Funnel<ByteBuffer> {
+        INSTANCE;
+
+        @Override
+        public void funnel(
+                @NotNull final ByteBuffer from,
+                @NotNull final PrimitiveSink into) {
+            into.putBytes(from.duplicate());
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package ru.mail.polis;
+
+import com.google.common.collect.Iterators;
+import com.google.common.hash.Hashing;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * {@link DAO} which hash-partitions keys across independent storage engines.
+ *
+ * <p>Every shard has its own memtable, log and compaction, so concurrent writers
+ * touching different keys don't contend on a single structure.
+ * Shards hold disjoint key sets, so ordered iteration is a plain merge of the shard iterators.
+ *
+ * <p>Every shard has a lock shared by its writers, which {@link #seal} takes exclusively for all
+ * the shards at once, so a write can't land in some of the shard snapshots and miss the others.
+ */
+final class ShardedDAO implements DAO, Checkpointable {
+    static final int BULK_LOAD_QUEUE_SIZE = 1024;
+
+    // Compared by identity
+    private static final Record END = Record.of(ByteBuffer.allocate(0), ByteBuffer.allocate(0));
+    private static final Record ABORT = Record.of(ByteBuffer.allocate(0), ByteBuffer.allocate(0));
+
+    private final DAO[] shards;
+    private final ReadWriteLock[] locks;
+
+    ShardedDAO(@NotNull final DAO... shards) {
+        if (shards.length == 0) {
+            throw new IllegalArgumentException("No shards");
+        }
+        this.shards = shards.clone();
+        this.locks = new ReadWriteLock[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    private int index(@NotNull final ByteBuffer key) {
+        // The layout is persistent, so don't rely on the unspecified ByteBuffer.hashCode()
+        final int hash = Hashing.murmur3_32().hashBytes(key.duplicate()).asInt();
+        return Math.floorMod(hash, shards.length);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Record> iterator(@NotNull final ByteBuffer from) throws IOException {
+        final List<Iterator<Record>> iters = new ArrayList<>(shards.length);
+        for (final DAO shard : shards) {
+            iters.add(shard.iterator(from));
+        }
+        return Iterators.mergeSorted(iters, Record::compareTo);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Record> prefixScan(@NotNull final ByteBuffer prefix) throws IOException {
+        final List<Iterator<Record>> iters = new ArrayList<>(shards.length);
+        for (final DAO shard : shards) {
+            iters.add(shard.prefixScan(prefix));
+        }
+        return Iterators.mergeSorted(iters, Record::compareTo);
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer get(@NotNull final ByteBuffer key) throws IOException, NoSuchElementException {
+        return shards[index(key)].get(key);
+    }
+
+    @Override
+    public void upsert(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value) throws IOException {
+        final int i = index(key);
+        locks[i].readLock().lock();
+        try {
+            shards[i].upsert(key, value);
+        } finally {
+            locks[i].readLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(@NotNull final ByteBuffer key) throws IOException {
+        final int i = index(key);
+        locks[i].readLock().lock();
+        try {
+            shards[i].remove(key);
+        } finally {
+            locks[i].readLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the range from every shard in turn, so a concurrent {@link #seal} may see it
+     * removed from some of the shards only.
+     */
+    @Override
+    public void removeRange(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) throws IOException {
+        // Locked shard by shard, so a pending seal waits for a single shard at most
+        for (int i = 0; i < shards.length; i++) {
+            locks[i].readLock().lock();
+            try {
+                shards[i].removeRange(from, to);
+            } finally {
+                locks[i].readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Stream the sorted {@code records} into a single {@link DAO#bulkLoad} of every shard
+     * running on its own thread, each fed through a small bounded queue.
+     *
+     * <p>The shards fail their loads together, e.g. when the keys are out of order,
+     * but commit them independently, so a shard failing to commit its load or a concurrent
+     * {@link #seal} may see the records on some shards only.
+     */
+    @Override
+    public void bulkLoad(@NotNull final Iterator<Record> records) throws IOException {
+        final List<BlockingQueue<Record>> queues = new ArrayList<>(shards.length);
+        final List<Future<?>> loads = new ArrayList<>(shards.length);
+        final ExecutorService loaders = Executors.newFixedThreadPool(shards.length);
+        try {
+            for (final DAO shard : shards) {
+                final BlockingQueue<Record> queue = new ArrayBlockingQueue<>(BULK_LOAD_QUEUE_SIZE);
+                queues.add(queue);
+                loads.add(loaders.submit(() -> {
+                    shard.bulkLoad(new QueueIterator(queue));
+                    return null;
+                }));
+            }
+
+            boolean routed = true;
+            try {
+                final Iterator<Record> iter = Iters.ascending(records);
+                while (routed && iter.hasNext()) {
+                    final Record record = iter.next();
+                    final int i = index(record.getKey());
+                    // The shard has failed otherwise
+                    routed = put(queues.get(i), loads.get(i), record);
+                }
+            } catch (RuntimeException e) {
+                finish(queues, loads, ABORT);
+                try {
+                    await(loads);
+                } catch (IOException | RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+
+            finish(queues, loads, routed ? END : ABORT);
+            await(loads);
+            if (!routed) {
+                throw new IllegalStateException("Shard finished the bulk load before the end of the records");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            loaders.shutdownNow();
+            throw new InterruptedIOException("Interrupted bulk load");
+        } finally {
+            loaders.shutdown();
+        }
+    }
+
+    /**
+     * Put the {@code record} into the {@code queue} unless the {@code load} reading it has finished.
+     *
+     * @return whether the record has been queued
+     */
+    private static boolean put(
+            @NotNull final BlockingQueue<Record> queue,
+            @NotNull final Future<?> load,
+            @NotNull final Record record) throws InterruptedException {
+        while (!load.isDone()) {
+            if (queue.offer(record, 100, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void finish(
+            @NotNull final List<BlockingQueue<Record>> queues,
+            @NotNull final List<Future<?>> loads,
+            @NotNull final Record last) throws InterruptedException {
+        for (int i = 0; i < queues.size(); i++) {
+            put(queues.get(i), loads.get(i), last);
+        }
+    }
+
+    private static void await(@NotNull final List<Future<?>> loads) throws IOException, InterruptedException {
+        Throwable error = null;
+        for (final Future<?> load : loads) {
+            try {
+                load.get();
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                // The aborted shards only echo the failure of another one
+                if (cause instanceof BulkLoadAbortedException) {
+                    continue;
+                }
+                if (error == null) {
+                    error = cause;
+                } else {
+                    error.addSuppressed(cause);
+                }
+            }
+        }
+        if (error == null) {
+            return;
+        }
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        throw new IOException(error);
+    }
+
+    @Override
+    public void compact() throws IOException {
+        for (final DAO shard : shards) {
+            shard.compact();
+        }
+    }
+
+    /**
+     * Seal every shard holding the writers of all the shards out meanwhile.
+     * Writers wait for the sum of the shard seals, which are expected to be cheap,
+     * while the flushes and the links of {@link Checkpoint#export} run unblocked.
+     *
+     * @throws UnsupportedOperationException if any shard is not {@link Checkpointable}
+     */
+    @NotNull
+    @Override
+    public Checkpoint seal() throws IOException {
+        for (final DAO shard : shards) {
+            if (!(shard instanceof Checkpointable)) {
+                throw new UnsupportedOperationException("Shard doesn't support checkpoints: " + shard);
+            }
+        }
+
+        final Checkpoint[] sealed = new Checkpoint[shards.length];
+        // Always in index order to avoid deadlocks
+        for (final ReadWriteLock lock : locks) {
+            lock.writeLock().lock();
+        }
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                sealed[i] = ((Checkpointable) shards[i]).seal();
+            }
+        } catch (IOException | RuntimeException e) {
+            try {
+                closeAll(sealed);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        } finally {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].writeLock().unlock();
+            }
+        }
+        return new ShardedCheckpoint(sealed);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeAll(shards);
+    }
+
+    private static void closeAll(@NotNull final Closeable... closeables) throws IOException {
+        IOException error = null;
+        for (final Closeable closeable : closeables) {
+            if (closeable == null) {
+                continue;
+            }
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Lazy iterator over the records routed to a shard by {@link #bulkLoad}.
+     */
+    private static final class QueueIterator implements Iterator<Record> {
+        private final BlockingQueue<Record> queue;
+        private Record next;
+
+        QueueIterator(@NotNull final BlockingQueue<Record> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new BulkLoadAbortedException();
+                }
+            }
+            if (next == ABORT) {
+                throw new BulkLoadAbortedException();
+            }
+            return next != END;
+        }
+
+        @Override
+        public Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Record result = next;
+            next = null;
+            return result;
+        }
+    }
+
+    /**
+     * Thrown into a shard {@link DAO#bulkLoad} to make it fail along with the others.
+     */
+    private static final class BulkLoadAbortedException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        BulkLoadAbortedException() {
+            super("Bulk load aborted");
+        }
+    }
+
+    private static final class ShardedCheckpoint implements Checkpoint {
+        private final Checkpoint[] sealed;
+
+        ShardedCheckpoint(@NotNull final Checkpoint... sealed) {
+            this.sealed = sealed;
+        }
+
+        /**
+         * Export every shard into its own subfolder of the {@code target} and mark the snapshot
+         * as a complete storage only afterwards. Removes everything created on failure.
+         */
+        @Override
+        public void export(@NotNull final File target) throws IOException {
+            Files.requireEmpty(target);
+            final boolean created = !target.exists();
+            if (created && !target.mkdirs()) {
+                throw new IOException("Can't create directory: " + target);
+            }
+
+            try {
+                for (int i = 0; i < sealed.length; i++) {
+                    sealed[i].export(new File(target, DAOFactory.SHARD_PREFIX + i));
+                }
+                DAOFactory.writeShardsMarker(target, sealed.length);
+            } catch (IOException | RuntimeException e) {
+                try {
+                    if (created) {
+                        Files.recursiveDelete(target);
+                    } else {
+                        final File[] files = target.listFiles();
+                        if (files != null) {
+                            for (final File file : files) {
+                                Files.recursiveDelete(file);
+                            }
+                        }
+                    }
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeAll(sealed);
+        }
+    }
+}
@@ -0,0 +1,507 @@
+package ru.mail.polis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sequential table I/O for compaction, bulk load and full scans.
+ *
+ * <p>Such passes touch every table once, so going through the page cache would evict
+ * the blocks foreground {@link DAO#get} depends on. Streams opened here use {@code O_DIRECT}
+ * with aligned buffers where the JDK and the file system support it and fall back to
+ * buffered sequential reads and writes otherwise. Foreground lookups should keep using
+ * regular {@link FileChannel}s or mappings.
+ *
+ * <p>Direct reads get no kernel read-ahead, so direct inputs read the next block
+ * in the background while the current one is consumed.
+ *
+ * <p>Direct memory is capped by the heap size, so buffers are moderate and pooled:
+ * a compaction merging a hundred tables takes a few dozen megabytes at most.
+ */
+public final class StreamingIO {
+    static final int BUFFER_SIZE = 128 * 1024;
+    private static final int MAX_ALIGNMENT = 16 * 1024;
+    private static final int POOL_SIZE = 32;
+    private static final BlockingQueue<ByteBuffer> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final ExecutorService PREFETCH = Executors.newCachedThreadPool(r -> {
+        final Thread thread = new Thread(r, "streaming-io-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Looked up reflectively to keep the internal API out of the build
+    @Nullable
+    private static final OpenOption DIRECT = directOption();
+
+    private StreamingIO() {
+        // Don't instantiate
+    }
+
+    /**
+     * Open the {@code file} for a single sequential pass.
+     */
+    @NotNull
+    public static InputStream input(@NotNull final Path file) throws IOException {
+        return input(file, true);
+    }
+
+    @NotNull
+    static InputStream input(
+            @NotNull final Path file,
+            final boolean tryDirect) throws IOException {
+        final int alignment = tryDirect ? alignment(file) : 0;
+        // Acquired first, so a failure can't leak the channel
+        final ByteBuffer raw = acquire();
+        try {
+            if (alignment > 0) {
+                final FileChannel direct = openDirect(file, StandardOpenOption.READ);
+                if (direct != null) {
+                    return new ChannelInput(direct, alignment, raw);
+                }
+            }
+            return new ChannelInput(FileChannel.open(file, StandardOpenOption.READ), 1, raw);
+        } catch (IOException | RuntimeException e) {
+            release(raw);
+            throw e;
+        }
+    }
+
+    /**
+     * Create the {@code file} to be written sequentially, replacing the existing one.
+     * The contents and the directory entry of the file are durable once the stream is closed.
+     */
+    @NotNull
+    public static OutputStream output(@NotNull final Path file) throws IOException {
+        return output(file, true);
+    }
+
+    @NotNull
+    static OutputStream output(
+            @NotNull final Path file,
+            final boolean tryDirect) throws IOException {
+        final OpenOption[] options = {
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING};
+        final Path parent = file.toAbsolutePath().getParent();
+        final int alignment = tryDirect ? alignment(parent) : 0;
+        // Acquired first, so a failure can't leak the channel
+        final ByteBuffer raw = acquire();
+        try {
+            if (alignment > 0) {
+                final FileChannel direct = openDirect(file, options);
+                if (direct != null) {
+                    return new ChannelOutput(direct, parent, alignment, raw);
+                }
+            }
+            return new ChannelOutput(FileChannel.open(file, options), parent, 1, raw);
+        } catch (IOException | RuntimeException e) {
+            release(raw);
+            throw e;
+        }
+    }
+
+    /**
+     * Check whether the {@code stream} opened here bypasses the page cache.
+     */
+    static boolean isDirect(@NotNull final Closeable stream) {
+        if (stream instanceof ChannelInput) {
+            return ((ChannelInput) stream).alignment > 1;
+        }
+        if (stream instanceof ChannelOutput) {
+            return ((ChannelOutput) stream).alignment > 1;
+        }
+        return false;
+    }
+
+    @Nullable
+    private static OpenOption directOption() {
+        try {
+            final Object[] options = Class.forName("com.sun.nio.file.ExtendedOpenOption").getEnumConstants();
+            if (options != null) {
+                for (final Object option : options) {
+                    if ("DIRECT".equals(((Enum<?>) option).name())) {
+                        return (OpenOption) option;
+                    }
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            // Not available in this JDK
+        }
+        return null;
+    }
+
+    /**
+     * Get the direct I/O alignment for the {@code path} or {@code 0} if direct I/O is not applicable.
+     */
+    private static int alignment(@NotNull final Path path) throws IOException {
+        if (DIRECT == null) {
+            return 0;
+        }
+
+        final long blockSize;
+        try {
+            blockSize = java.nio.file.Files.getFileStore(path).getBlockSize();
+        } catch (UnsupportedOperationException e) {
+            return 0;
+        }
+        if (blockSize <= 1 || blockSize > MAX_ALIGNMENT || Long.bitCount(blockSize) != 1) {
+            return 0;
+        }
+        return (int) blockSize;
+    }
+
+    @Nullable
+    private static FileChannel openDirect(
+            @NotNull final Path file,
+            @NotNull final OpenOption... options) {
+        assert DIRECT != null;
+        final OpenOption[] withDirect = Arrays.copyOf(options, options.length + 1);
+        withDirect[options.length] = DIRECT;
+        try {
+            return FileChannel.open(file, withDirect);
+        } catch (IOException | UnsupportedOperationException e) {
+            // O_DIRECT is not supported by the file system
+            return null;
+        }
+    }
+
+    @NotNull
+    private static ByteBuffer acquire() {
+        final ByteBuffer pooled = POOL.poll();
+        return pooled == null ? ByteBuffer.allocateDirect(BUFFER_SIZE + 2 * MAX_ALIGNMENT) : pooled;
+    }
+
+    private static void release(@NotNull final ByteBuffer raw) {
+        raw.clear();
+        // Buffers beyond the pool capacity are left to the garbage collector
+        POOL.offer(raw);
+    }
+
+    @NotNull
+    private static ByteBuffer aligned(
+            @NotNull final ByteBuffer raw,
+            final int alignment) {
+        final ByteBuffer result = raw.clear().alignedSlice(alignment);
+        result.limit(BUFFER_SIZE);
+        return result.slice();
+    }
+
+    /**
+     * Sync the directory entries of the {@code dir} where the platform allows it.
+     */
+    private static void syncDirectory(@NotNull final Path dir) throws IOException {
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(dir, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Directories can't be opened on some platforms, e.g. Windows
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    private static long alignDown(
+            final long position,
+            final int alignment) {
+        return position - position % alignment;
+    }
+
+    private static final class ChannelInput extends InputStream {
+        private final FileChannel channel;
+        private final int alignment;
+
+        private ByteBuffer raw;
+        private ByteBuffer buffer;
+        private long position;
+
+        // The block being read in the background, direct mode only
+        private ByteBuffer nextRaw;
+        private ByteBuffer next;
+        private Future<?> pending;
+        private long pendingStart;
+
+        ChannelInput(
+                @NotNull final FileChannel channel,
+                final int alignment,
+                @NotNull final ByteBuffer raw) {
+            this.channel = channel;
+            this.alignment = alignment;
+            this.raw = raw;
+            this.buffer = aligned(raw, alignment);
+            this.buffer.limit(0);
+        }
+
+        /**
+         * Read the block at the aligned {@code start} into the {@code target} as far as possible.
+         */
+        private void read(
+                @NotNull final ByteBuffer target,
+                final long start) throws IOException {
+            target.clear();
+            int read = 0;
+            while (target.hasRemaining()) {
+                final int n = channel.read(target, start + read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+                // Direct reads must start at an aligned offset
+                if (read % alignment != 0) {
+                    break;
+                }
+            }
+            target.flip();
+        }
+
+        private void awaitPending() throws IOException {
+            try {
+                pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted read");
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException(cause);
+            } finally {
+                pending = null;
+            }
+        }
+
+        private void prefetch() {
+            if (nextRaw == null) {
+                nextRaw = acquire();
+                next = aligned(nextRaw, alignment);
+            }
+            final ByteBuffer target = next;
+            final long start = position;
+            pendingStart = start;
+            pending = PREFETCH.submit(() -> {
+                read(target, start);
+                return null;
+            });
+        }
+
+        private boolean fill() throws IOException {
+            if (buffer == null) {
+                throw new IOException("Stream closed");
+            }
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+
+            final long start = alignDown(position, alignment);
+            if (pending != null) {
+                final long prefetched = pendingStart;
+                awaitPending();
+                if (prefetched == start) {
+                    final ByteBuffer swapRaw = raw;
+                    final ByteBuffer swap = buffer;
+                    raw = nextRaw;
+                    buffer = next;
+                    nextRaw = swapRaw;
+                    next = swap;
+                } else {
+                    read(buffer, start);
+                }
+            } else {
+                read(buffer, start);
+            }
+
+            final int skip = (int) (position - start);
+            if (buffer.limit() <= skip) {
+                buffer.limit(0);
+                return false;
+            }
+            final boolean full = buffer.limit() == buffer.capacity();
+            buffer.position(skip);
+            position = start + buffer.limit();
+
+            // The page cache reads ahead for buffered channels
+            if (alignment > 1 && full) {
+                prefetch();
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(
+                @NotNull final byte[] b,
+                final int off,
+                final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+
+            final int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer == null ? 0 : buffer.remaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (raw == null) {
+                return;
+            }
+
+            try {
+                // Aborts the background read if any
+                channel.close();
+            } finally {
+                boolean idle = true;
+                if (pending != null) {
+                    final Future<?> read = pending;
+                    try {
+                        awaitPending();
+                    } catch (IOException e) {
+                        // The read is abandoned anyway
+                    }
+                    idle = read.isDone();
+                }
+                release(raw);
+                // A buffer still being read into is left to the garbage collector
+                if (nextRaw != null && idle) {
+                    release(nextRaw);
+                }
+                raw = null;
+                buffer = null;
+                nextRaw = null;
+                next = null;
+            }
+        }
+    }
+
+    private static final class ChannelOutput extends OutputStream {
+        private final FileChannel channel;
+        private final Path parent;
+        private final int alignment;
+
+        private ByteBuffer raw;
+        private ByteBuffer buffer;
+        private long size;
+
+        ChannelOutput(
+                @NotNull final FileChannel channel,
+                @NotNull final Path parent,
+                final int alignment,
+                @NotNull final ByteBuffer raw) {
+            this.channel = channel;
+            this.parent = parent;
+            this.alignment = alignment;
+            this.raw = raw;
+            this.buffer = aligned(raw, alignment);
+        }
+
+        private void ensureOpen() throws IOException {
+            if (buffer == null) {
+                throw new IOException("Stream closed");
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            ensureOpen();
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) b);
+            size++;
+        }
+
+        @Override
+        public void write(
+                @NotNull final byte[] b,
+                final int off,
+                final int len) throws IOException {
+            ensureOpen();
+            int offset = off;
+            int remaining = len;
+            while (remaining > 0) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                final int n = Math.min(remaining, buffer.remaining());
+                buffer.put(b, offset, n);
+                offset += n;
+                remaining -= n;
+            }
+            size += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (raw == null) {
+                return;
+            }
+
+            try {
+                try {
+                    // Direct writes must cover whole blocks, so pad the tail
+                    final int tail = buffer.position() % alignment;
+                    if (tail != 0) {
+                        buffer.put(new byte[alignment - tail]);
+                    }
+                    drain();
+                } finally {
+                    // Cut the padding off even if the write failed
+                    channel.truncate(size);
+                }
+                channel.force(true);
+            } finally {
+                try {
+                    channel.close();
+                } finally {
+                    release(raw);
+                    raw = null;
+                    buffer = null;
+                }
+            }
+            // Make the new file itself survive a crash
+            syncDirectory(parent);
+        }
+    }
+}
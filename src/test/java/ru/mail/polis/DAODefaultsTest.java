@@ -0,0 +1,109 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for default methods of {@link DAO}.
+ */
+class DAODefaultsTest extends TestBase {
+    @Test
+    void bulkLoad() throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> map = new TreeMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.put(randomKey(), randomBuffer(8));
+        }
+        final List<Record> records = new ArrayList<>();
+        map.forEach((k, v) -> records.add(Record.of(k, v)));
+
+        final MemoryDAO dao = new MemoryDAO();
+        dao.bulkLoad(records.iterator());
+        assertEquals(map, dao.asMap());
+    }
+
+    @Test
+    void bulkLoadUnsorted() {
+        final ByteBuffer first = ByteBuffer.wrap(new byte[]{2});
+        final ByteBuffer second = ByteBuffer.wrap(new byte[]{1});
+        final ByteBuffer value = randomValue();
+        final List<Record> records = List.of(
+                Record.of(first, value),
+                Record.of(second, randomValue()));
+
+        final MemoryDAO dao = new MemoryDAO();
+        assertThrows(IllegalArgumentException.class, () -> dao.bulkLoad(records.iterator()));
+
+        // The fallback is not atomic, the prefix preceding the failure stays
+        assertEquals(Map.of(first, value), dao.asMap());
+    }
+
+    @Test
+    void removeRange() throws IOException {
+        final MemoryDAO dao = new MemoryDAO();
+        final NavigableMap<ByteBuffer, ByteBuffer> map = new TreeMap<>();
+        for (int i = 0; i < 3000; i++) {
+            final ByteBuffer key = randomKey();
+            final ByteBuffer value = randomBuffer(8);
+            dao.upsert(key, value);
+            map.put(key, value);
+        }
+
+        final ByteBuffer from = map.keySet().stream().skip(500).findFirst().orElseThrow();
+        final ByteBuffer to = map.keySet().stream().skip(2900).findFirst().orElseThrow();
+        dao.removeRange(from, to);
+        map.subMap(from, to).clear();
+        assertEquals(map, dao.asMap());
+
+        dao.removeRange(to, null);
+        map.tailMap(to).clear();
+        assertEquals(map, dao.asMap());
+    }
+
+    @Test
+    void prefixScan() throws IOException {
+        final MemoryDAO dao = new MemoryDAO();
+        final byte[][] prefixes = {
+                {1, 2},
+                {1, Byte.MAX_VALUE},
+                {Byte.MAX_VALUE, Byte.MAX_VALUE},
+                {-1}};
+        final byte[][] others = {
+                {1},
+                {1, 3},
+                {1, 1, Byte.MAX_VALUE},
+                {2},
+                {Byte.MAX_VALUE},
+                {-2, 0}};
+        for (final byte[] prefix : prefixes) {
+            for (int i = 0; i < 10; i++) {
+                dao.upsert(join(ByteBuffer.wrap(prefix), randomBuffer(4)), randomBuffer(8));
+            }
+        }
+        for (final byte[] other : others) {
+            dao.upsert(ByteBuffer.wrap(other), randomBuffer(8));
+        }
+
+        for (final byte[] prefix : prefixes) {
+            final ByteBuffer expected = ByteBuffer.wrap(prefix);
+            final Iterator<Record> iter = dao.prefixScan(expected);
+            int count = 0;
+            while (iter.hasNext()) {
+                final ByteBuffer key = iter.next().getKey();
+                key.limit(prefix.length);
+                assertEquals(expected, key);
+                count++;
+            }
+            assertEquals(10, count);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link Files} facilities.
+ */
+class FilesTest {
+    @Test
+    void hardLinkTree(@TempDir File data) throws IOException {
+        final File source = new File(data, "source");
+        final File nested = new File(source, "nested");
+        assertTrue(nested.mkdirs());
+        final Path table = write(new File(source, "1.db"));
+        final Path nestedTable = write(new File(nested, "2.db"));
+        write(new File(source, "log"));
+
+        final File target = new File(data, "target");
+        Files.hardLinkTree(source, target, file -> file.toString().endsWith(".db"));
+
+        assertEquals(fileKey(table), fileKey(new File(target, "1.db").toPath()));
+        assertEquals(fileKey(nestedTable), fileKey(new File(target, "nested/2.db").toPath()));
+        assertTrue(new File(target, "nested").isDirectory());
+        assertFalse(new File(target, "log").exists());
+    }
+
+    @Test
+    void hardLinkTreeIntoNonEmpty(@TempDir File data) throws IOException {
+        final File source = new File(data, "source");
+        assertTrue(source.mkdir());
+        write(new File(source, "1.db"));
+
+        final File target = new File(data, "target");
+        assertTrue(target.mkdir());
+        write(new File(target, "other"));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> Files.hardLinkTree(source, target, file -> true));
+        assertFalse(new File(target, "1.db").exists());
+    }
+
+    private static Path write(final File file) throws IOException {
+        return java.nio.file.Files.writeString(file.toPath(), file.getName());
+    }
+
+    private static Object fileKey(final Path file) throws IOException {
+        final Object key = java.nio.file.Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        assertNotNull(key);
+        return key;
+    }
+}
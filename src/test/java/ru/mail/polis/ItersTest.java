@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
  * Unit tests for {@link Iters} facilities.
@@ -39,4 +40,17 @@ class ItersTest {
                 ImmutableList.of(1, 2, 3, 5, 6),
                 ImmutableList.copyOf(collapsed));
     }
+
+    @Test
+    void ascending() {
+        assertFalse(Iters.ascending(Iters.<Integer>empty()).hasNext());
+
+        assertEquals(3, Iterators.size(Iters.ascending(ImmutableList.of(1, 2, 5).iterator())));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> Iterators.size(Iters.ascending(ImmutableList.of(1, 3, 2).iterator())));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> Iterators.size(Iters.ascending(ImmutableList.of(1, 1).iterator())));
+    }
 }
@@ -0,0 +1,67 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link LoadGenerator} facilities.
+ */
+class LoadGeneratorTest {
+    @Test
+    void histogramBuckets() {
+        for (long value = 0; value < 1_000_000; value += 7) {
+            final long lower = LoadGenerator.Histogram.lowerBound(LoadGenerator.Histogram.index(value));
+            assertTrue(lower <= value);
+            assertTrue(value - lower <= value / 32);
+        }
+        assertTrue(LoadGenerator.Histogram.index(Long.MAX_VALUE) >= 0);
+    }
+
+    @Test
+    void histogramPercentiles() {
+        final LoadGenerator.Histogram histogram = new LoadGenerator.Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        final long[] counts = histogram.drain();
+        assertEquals(1000, LoadGenerator.Histogram.count(counts));
+        assertEquals(0, LoadGenerator.Histogram.count(histogram.snapshot()));
+
+        final long p50 = LoadGenerator.Histogram.percentile(counts, 0.5);
+        assertTrue(p50 >= 480 && p50 <= 500);
+        final long p999 = LoadGenerator.Histogram.percentile(counts, 0.999);
+        assertTrue(p999 >= 960 && p999 <= 999);
+    }
+
+    @Test
+    void histogramMerge() {
+        final LoadGenerator.Histogram even = new LoadGenerator.Histogram();
+        final LoadGenerator.Histogram odd = new LoadGenerator.Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            (i % 2 == 0 ? even : odd).record(i);
+        }
+
+        final long[] counts = new long[LoadGenerator.Histogram.BUCKETS];
+        LoadGenerator.Histogram.add(counts, even.drain());
+        LoadGenerator.Histogram.add(counts, odd.drain());
+        assertEquals(1000, LoadGenerator.Histogram.count(counts));
+        final long p50 = LoadGenerator.Histogram.percentile(counts, 0.5);
+        assertTrue(p50 >= 480 && p50 <= 500);
+    }
+
+    @Test
+    void zipfianRange() {
+        final LoadGenerator.Zipfian zipfian = new LoadGenerator.Zipfian(1000);
+        int zeros = 0;
+        for (int i = 0; i < 10_000; i++) {
+            final long next = zipfian.next();
+            assertTrue(next >= 0 && next < 1000);
+            if (next == 0) {
+                zeros++;
+            }
+        }
+        assertTrue(zeros > 10_000 / 1000);
+    }
+}
@@ -0,0 +1,59 @@
+package ru.mail.polis;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Minimal in-memory {@link DAO} used to test wrappers and default methods
+ * independently of the storage engine.
+ */
+class MemoryDAO implements DAO {
+    private final NavigableMap<ByteBuffer, ByteBuffer> map = new ConcurrentSkipListMap<>();
+
+    @NotNull
+    @Override
+    public Iterator<Record> iterator(@NotNull final ByteBuffer from) {
+        return map.tailMap(from).entrySet().stream()
+                .map(e -> Record.of(e.getKey(), e.getValue()))
+                .iterator();
+    }
+
+    @Override
+    public void upsert(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value) {
+        map.put(copy(key), copy(value));
+    }
+
+    @Override
+    public void remove(@NotNull final ByteBuffer key) {
+        map.remove(key);
+    }
+
+    int size() {
+        return map.size();
+    }
+
+    @NotNull
+    Map<ByteBuffer, ByteBuffer> asMap() {
+        return map;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+
+    @NotNull
+    private static ByteBuffer copy(@NotNull final ByteBuffer buffer) {
+        final ByteBuffer result = ByteBuffer.allocate(buffer.remaining());
+        result.put(buffer.duplicate());
+        result.rewind();
+        return result;
+    }
+}
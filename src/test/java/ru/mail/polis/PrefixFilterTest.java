@@ -0,0 +1,75 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link PrefixFilter} and {@link PrefixExtractor}.
+ */
+class PrefixFilterTest extends TestBase {
+    @Test
+    void extractors() {
+        final PrefixExtractor fixed = PrefixExtractor.fixedLength(3);
+        assertEquals(from("abc"), fixed.extract(from("abcdef")));
+        assertNull(fixed.extract(from("ab")));
+
+        final PrefixExtractor delimited = PrefixExtractor.delimited((byte) '/', 2);
+        assertEquals(from("tenant/entity/"), delimited.extract(from("tenant/entity/id")));
+        assertNull(delimited.extract(from("tenant/entity")));
+    }
+
+    @Test
+    void mightContain() throws IOException {
+        final PrefixFilter filter = PrefixFilter.create(
+                PrefixExtractor.delimited((byte) '/', 1), 100, 0.01);
+        filter.add(from("alpha/1"));
+        filter.add(from("beta/2"));
+        filter.add(from("unprefixed"));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        filter.writeTo(out);
+        final PrefixFilter read = PrefixFilter.readFrom(
+                new ByteArrayInputStream(out.toByteArray()),
+                PrefixExtractor.delimited((byte) '/', 1));
+
+        for (final PrefixFilter f : new PrefixFilter[]{filter, read}) {
+            assertTrue(f.mightContain(from("alpha/")));
+            assertTrue(f.mightContain(from("beta/2")));
+            assertTrue(f.mightContain(from("gamma")));
+            assertFalse(f.mightContain(from("gamma/")));
+        }
+    }
+
+    @Test
+    void extractorMismatch() throws IOException {
+        final PrefixFilter filter = PrefixFilter.create(PrefixExtractor.fixedLength(4), 100, 0.01);
+        filter.add(from("abcdef"));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        filter.writeTo(out);
+        final byte[] bytes = out.toByteArray();
+
+        assertTrue(
+                PrefixFilter.readFrom(new ByteArrayInputStream(bytes), PrefixExtractor.fixedLength(4))
+                        .mightContain(from("abcd")));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> PrefixFilter.readFrom(new ByteArrayInputStream(bytes), PrefixExtractor.fixedLength(3)));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> PrefixFilter.readFrom(
+                        new ByteArrayInputStream(bytes),
+                        PrefixExtractor.delimited((byte) '/', 4)));
+    }
+
+    private static ByteBuffer from(final String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,452 @@
+package ru.mail.polis;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ShardedDAO}.
+ */
+class ShardedDAOTest extends TestBase {
+    private static final int SHARDS = 4;
+    private static final Callable<?> NOTHING = () -> null;
+
+    private static MemoryDAO[] shards() {
+        final MemoryDAO[] result = new MemoryDAO[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            result[i] = new MemoryDAO();
+        }
+        return result;
+    }
+
+    @Test
+    void upsertSpreadsAcrossShards() throws IOException {
+        final MemoryDAO[] shards = shards();
+        final DAO dao = new ShardedDAO(shards);
+
+        final int count = 1000;
+        for (int i = 0; i < count; i++) {
+            dao.upsert(randomKey(), randomBuffer(8));
+        }
+
+        int total = 0;
+        for (final MemoryDAO shard : shards) {
+            assertTrue(shard.size() > 0);
+            total += shard.size();
+        }
+        assertEquals(count, total);
+    }
+
+    @Test
+    void getAndRemove() throws IOException {
+        final DAO dao = new ShardedDAO(shards());
+        final ByteBuffer key = randomKey();
+        final ByteBuffer value = randomValue();
+        dao.upsert(key, value);
+        assertEquals(value, dao.get(key.duplicate()));
+        dao.remove(key);
+        assertThrows(NoSuchElementException.class, () -> dao.get(key));
+    }
+
+    @Test
+    void orderedScan() throws IOException {
+        final DAO dao = new ShardedDAO(shards());
+
+        final int count = 100;
+        final NavigableMap<ByteBuffer, ByteBuffer> map = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            final ByteBuffer key = randomKey();
+            final ByteBuffer value = randomBuffer(8);
+            dao.upsert(key, value);
+            map.put(key, value);
+        }
+
+        final ByteBuffer from = map.keySet().stream().skip(count / 3).findFirst().orElseThrow();
+        final ByteBuffer to = map.keySet().stream().skip(2 * count / 3).findFirst().orElseThrow();
+        final Iterator<Map.Entry<ByteBuffer, ByteBuffer>> expectedIter =
+                map.subMap(from, to).entrySet().iterator();
+        final Iterator<Record> actualIter = dao.range(from, to);
+        while (expectedIter.hasNext()) {
+            final Map.Entry<ByteBuffer, ByteBuffer> expected = expectedIter.next();
+            final Record actual = actualIter.next();
+            assertEquals(expected.getKey(), actual.getKey());
+            assertEquals(expected.getValue(), actual.getValue());
+        }
+        assertFalse(actualIter.hasNext());
+    }
+
+    @Test
+    void removeRangeAcrossShards() throws IOException {
+        final MemoryDAO[] shards = shards();
+        final DAO dao = new ShardedDAO(shards);
+
+        final int count = 1000;
+        final NavigableMap<ByteBuffer, ByteBuffer> map = new TreeMap<>();
+        while (map.size() < count) {
+            final ByteBuffer key = randomKey();
+            final ByteBuffer value = randomBuffer(8);
+            dao.upsert(key, value);
+            map.put(key, value);
+        }
+
+        final ByteBuffer from = map.keySet().stream().skip(count / 3).findFirst().orElseThrow();
+        final ByteBuffer to = map.keySet().stream().skip(2 * count / 3).findFirst().orElseThrow();
+        for (final MemoryDAO shard : shards) {
+            assertTrue(shard.range(from, to).hasNext());
+        }
+
+        dao.removeRange(from, to);
+        map.subMap(from, to).clear();
+
+        for (final MemoryDAO shard : shards) {
+            assertFalse(shard.range(from, to).hasNext());
+        }
+        final Iterator<Record> actualIter = dao.iterator(ByteBuffer.allocate(0));
+        for (final Map.Entry<ByteBuffer, ByteBuffer> expected : map.entrySet()) {
+            final Record actual = actualIter.next();
+            assertEquals(expected.getKey(), actual.getKey());
+            assertEquals(expected.getValue(), actual.getValue());
+        }
+        assertFalse(actualIter.hasNext());
+    }
+
+    @Test
+    void prefixScanAcrossShards() throws IOException {
+        final MemoryDAO[] shards = shards();
+        final DAO dao = new ShardedDAO(shards);
+
+        final ByteBuffer prefix = ByteBuffer.wrap(new byte[]{1, 2});
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        while (expected.size() < 100) {
+            final ByteBuffer key = join(prefix, randomBuffer(4));
+            final ByteBuffer value = randomBuffer(8);
+            dao.upsert(key, value);
+            expected.put(key, value);
+        }
+        for (final byte[] other : new byte[][]{{1}, {1, 1, 2}, {1, 3}, {2}}) {
+            for (int i = 0; i < 10; i++) {
+                dao.upsert(join(ByteBuffer.wrap(other), randomBuffer(4)), randomBuffer(8));
+            }
+        }
+
+        for (final MemoryDAO shard : shards) {
+            assertTrue(shard.prefixScan(prefix).hasNext());
+        }
+        final Iterator<Record> actualIter = dao.prefixScan(prefix);
+        for (final Map.Entry<ByteBuffer, ByteBuffer> e : expected.entrySet()) {
+            final Record actual = actualIter.next();
+            assertEquals(e.getKey(), actual.getKey());
+            assertEquals(e.getValue(), actual.getValue());
+        }
+        assertFalse(actualIter.hasNext());
+    }
+
+    @Test
+    void shardCountMismatch(@TempDir File data) throws IOException {
+        java.nio.file.Files.writeString(new File(data, DAOFactory.SHARDS_MARKER).toPath(), "2");
+        assertThrows(IllegalArgumentException.class, () -> DAOFactory.create(data, 4));
+        assertThrows(IllegalArgumentException.class, () -> DAOFactory.create(data, 1));
+        assertThrows(IllegalArgumentException.class, () -> DAOFactory.create(data));
+    }
+
+    @Test
+    void missingShard(@TempDir File data) throws IOException {
+        java.nio.file.Files.writeString(new File(data, DAOFactory.SHARDS_MARKER).toPath(), "2");
+        assertTrue(new File(data, DAOFactory.SHARD_PREFIX + 0).mkdir());
+        assertThrows(IllegalArgumentException.class, () -> DAOFactory.create(data, 2));
+        assertFalse(new File(data, DAOFactory.SHARD_PREFIX + 1).exists());
+    }
+
+    @Test
+    void failedCreationLeavesNothing(@TempDir File data) throws IOException {
+        DAO dao = null;
+        try {
+            dao = DAOFactory.create(data, 4);
+        } catch (RuntimeException | IOException e) {
+            // The engine fails to open
+            final String[] files = data.list();
+            assertNotNull(files);
+            assertEquals(0, files.length);
+        }
+        if (dao != null) {
+            dao.close();
+            assertTrue(new File(data, DAOFactory.SHARDS_MARKER).exists());
+        }
+    }
+
+    @Test
+    void unshardedStorage(@TempDir File data) throws IOException {
+        assertTrue(new File(data, "table").createNewFile());
+        assertThrows(IllegalArgumentException.class, () -> DAOFactory.create(data, 2));
+        assertFalse(new File(data, DAOFactory.SHARDS_MARKER).exists());
+    }
+
+    /**
+     * Shards making their bulk loads visible only once the records are over.
+     */
+    private static MemoryDAO[] loaders(
+            @NotNull final AtomicInteger loads,
+            final int failing) {
+        final MemoryDAO[] result = new MemoryDAO[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            final boolean fail = i == failing;
+            result[i] = new MemoryDAO() {
+                @Override
+                public void bulkLoad(@NotNull final Iterator<Record> records) throws IOException {
+                    loads.incrementAndGet();
+                    final List<Record> loaded = new ArrayList<>();
+                    while (records.hasNext()) {
+                        loaded.add(records.next());
+                        if (fail) {
+                            throw new IOException("Disk full");
+                        }
+                    }
+                    super.bulkLoad(loaded.iterator());
+                }
+            };
+        }
+        return result;
+    }
+
+    private static long total(@NotNull final MemoryDAO... shards) {
+        long result = 0;
+        for (final MemoryDAO shard : shards) {
+            result += shard.size();
+        }
+        return result;
+    }
+
+    @Test
+    void bulkLoad() throws IOException {
+        final AtomicInteger loads = new AtomicInteger();
+        final MemoryDAO[] shards = loaders(loads, -1);
+        final ShardedDAO dao = new ShardedDAO(shards);
+
+        // Enough data to fill the queues many times over
+        final int count = 100 * ShardedDAO.BULK_LOAD_QUEUE_SIZE;
+        final NavigableMap<ByteBuffer, ByteBuffer> map = new TreeMap<>();
+        while (map.size() < count) {
+            map.put(randomKey(), randomBuffer(8));
+        }
+        dao.bulkLoad(map.entrySet().stream().map(e -> Record.of(e.getKey(), e.getValue())).iterator());
+
+        assertEquals(SHARDS, loads.get());
+        final Map<ByteBuffer, ByteBuffer> actual = new TreeMap<>();
+        for (final MemoryDAO shard : shards) {
+            assertTrue(shard.size() > 0);
+            actual.putAll(shard.asMap());
+        }
+        assertEquals(map, actual);
+    }
+
+    @Test
+    void bulkLoadUnsorted() {
+        final MemoryDAO[] shards = loaders(new AtomicInteger(), -1);
+        final ShardedDAO dao = new ShardedDAO(shards);
+
+        final NavigableMap<ByteBuffer, ByteBuffer> map = new TreeMap<>();
+        while (map.size() < 10 * ShardedDAO.BULK_LOAD_QUEUE_SIZE) {
+            map.put(randomKey(), randomBuffer(8));
+        }
+        final Iterator<Record> records = map.descendingMap().entrySet().stream()
+                .map(e -> Record.of(e.getKey(), e.getValue()))
+                .iterator();
+        assertThrows(IllegalArgumentException.class, () -> dao.bulkLoad(records));
+        assertEquals(0, total(shards));
+    }
+
+    @Test
+    void bulkLoadFailingShard() {
+        final AtomicInteger loads = new AtomicInteger();
+        final MemoryDAO[] shards = loaders(loads, 1);
+        final ShardedDAO dao = new ShardedDAO(shards);
+
+        final NavigableMap<ByteBuffer, ByteBuffer> map = new TreeMap<>();
+        while (map.size() < 10 * ShardedDAO.BULK_LOAD_QUEUE_SIZE) {
+            map.put(randomKey(), randomBuffer(8));
+        }
+        final Iterator<Record> records = map.entrySet().stream()
+                .map(e -> Record.of(e.getKey(), e.getValue()))
+                .iterator();
+        final IOException e = assertThrows(IOException.class, () -> dao.bulkLoad(records));
+        assertEquals("Disk full", e.getMessage());
+        assertEquals(SHARDS, loads.get());
+        assertEquals(0, total(shards));
+    }
+
+    @Test
+    void checkpointUnsupported(@TempDir File data) {
+        final File target = new File(data, "snapshot");
+        final ShardedDAO dao = new ShardedDAO(shards());
+        assertThrows(UnsupportedOperationException.class, () -> dao.checkpoint(target));
+        assertFalse(target.exists());
+    }
+
+    @Test
+    void checkpointHoldsWritersOut(@TempDir File data) throws Exception {
+        final int count = 100;
+        final AtomicReference<ShardedDAO> dao = new AtomicReference<>();
+        final AtomicReference<Thread> writer = new AtomicReference<>();
+        final SnapshotDAO[] shards = new SnapshotDAO[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            final boolean first = i == 0;
+            shards[i] = new SnapshotDAO(() -> {
+                if (first) {
+                    // Writes issued in the middle of the seal must wait for it
+                    final Thread thread = new Thread(() -> upsert(dao.get(), count));
+                    writer.set(thread);
+                    thread.start();
+                    Thread.sleep(100);
+                }
+                return null;
+            }, NOTHING);
+        }
+        dao.set(new ShardedDAO(shards));
+        upsert(dao.get(), count);
+
+        final File target = new File(data, "snapshot");
+        dao.get().checkpoint(target);
+        writer.get().join();
+
+        assertEquals(count, snapshotted(target));
+        assertEquals(
+                Integer.toString(SHARDS),
+                java.nio.file.Files.readString(new File(target, DAOFactory.SHARDS_MARKER).toPath()));
+
+        assertEquals(2 * count, total(shards));
+    }
+
+    @Test
+    void exportDoesNotBlockWriters(@TempDir File data) throws Exception {
+        final int count = 100;
+        final AtomicReference<ShardedDAO> dao = new AtomicReference<>();
+        final SnapshotDAO[] shards = new SnapshotDAO[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new SnapshotDAO(NOTHING, () -> {
+                final Thread thread = new Thread(() -> upsert(dao.get(), 1));
+                thread.start();
+                thread.join(10_000);
+                assertFalse(thread.isAlive());
+                return null;
+            });
+        }
+        dao.set(new ShardedDAO(shards));
+        upsert(dao.get(), count);
+
+        final File target = new File(data, "snapshot");
+        dao.get().checkpoint(target);
+
+        // Writes issued during the export don't get into the snapshot
+        assertEquals(count, snapshotted(target));
+        assertEquals(count + SHARDS, total(shards));
+    }
+
+    @Test
+    void failedExportLeavesNothing(@TempDir File data) throws IOException {
+        final SnapshotDAO[] shards = new SnapshotDAO[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            final boolean last = i == SHARDS - 1;
+            shards[i] = new SnapshotDAO(NOTHING, () -> {
+                if (last) {
+                    throw new IOException("Disk full");
+                }
+                return null;
+            });
+        }
+        final ShardedDAO dao = new ShardedDAO(shards);
+        upsert(dao, 100);
+
+        final File target = new File(data, "snapshot");
+        assertThrows(IOException.class, () -> dao.checkpoint(target));
+        assertFalse(target.exists());
+
+        assertTrue(target.mkdir());
+        assertThrows(IOException.class, () -> dao.checkpoint(target));
+        final String[] files = target.list();
+        assertNotNull(files);
+        assertEquals(0, files.length);
+    }
+
+    private static void upsert(
+            @NotNull final DAO dao,
+            final int count) {
+        try {
+            for (int i = 0; i < count; i++) {
+                dao.upsert(randomKey(), randomBuffer(8));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long snapshotted(@NotNull final File target) throws IOException {
+        long result = 0;
+        for (int i = 0; i < SHARDS; i++) {
+            final File snapshot = new File(target, DAOFactory.SHARD_PREFIX + i + "/snapshot");
+            result += Long.parseLong(java.nio.file.Files.readString(snapshot.toPath()));
+        }
+        return result;
+    }
+
+    /**
+     * Records the key count as of the seal in its snapshots.
+     */
+    private static final class SnapshotDAO extends MemoryDAO implements Checkpointable {
+        private final Callable<?> onSeal;
+        private final Callable<?> onExport;
+
+        SnapshotDAO(
+                final Callable<?> onSeal,
+                final Callable<?> onExport) {
+            this.onSeal = onSeal;
+            this.onExport = onExport;
+        }
+
+        private static void call(final Callable<?> hook) throws IOException {
+            try {
+                hook.call();
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+
+        @NotNull
+        @Override
+        public Checkpoint seal() throws IOException {
+            final int size = size();
+            call(onSeal);
+            return new Checkpoint() {
+                @Override
+                public void export(@NotNull final File target) throws IOException {
+                    call(onExport);
+                    assertTrue(target.mkdir());
+                    java.nio.file.Files.writeString(new File(target, "snapshot").toPath(), Integer.toString(size));
+                }
+
+                @Override
+                public void close() {
+                    // Nothing is pinned
+                }
+            };
+        }
+    }
+}
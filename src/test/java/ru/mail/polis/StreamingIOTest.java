@@ -0,0 +1,101 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Unit tests for {@link StreamingIO}.
+ */
+class StreamingIOTest extends TestBase {
+    private static final int[] SIZES = {
+            0, 1, 4095, 4096, StreamingIO.BUFFER_SIZE + 12345, 4 * StreamingIO.BUFFER_SIZE, 5 * StreamingIO.BUFFER_SIZE + 777};
+
+    @Test
+    void buffered(@TempDir File data) throws IOException {
+        for (final int size : SIZES) {
+            final Path file = new File(data, "table" + size).toPath();
+            final byte[] expected = randomBuffer(size + 1).array();
+
+            try (OutputStream out = StreamingIO.output(file, false)) {
+                assertFalse(StreamingIO.isDirect(out));
+                write(out, expected, size);
+            }
+            assertEquals(size, java.nio.file.Files.size(file));
+
+            try (InputStream in = StreamingIO.input(file, false)) {
+                assertFalse(StreamingIO.isDirect(in));
+                assertArrayEquals(Arrays.copyOf(expected, size), read(in));
+            }
+        }
+    }
+
+    @Test
+    void direct(@TempDir File data) throws IOException {
+        for (final int size : SIZES) {
+            final Path file = new File(data, "table" + size).toPath();
+            final byte[] expected = randomBuffer(size + 1).array();
+
+            try (OutputStream out = StreamingIO.output(file)) {
+                // Depends on the JDK and the file system of the temporary folder
+                assumeTrue(StreamingIO.isDirect(out));
+                write(out, expected, size);
+            }
+            assertEquals(size, java.nio.file.Files.size(file));
+
+            try (InputStream in = StreamingIO.input(file)) {
+                assertTrue(StreamingIO.isDirect(in));
+                assertArrayEquals(Arrays.copyOf(expected, size), read(in));
+            }
+
+            // Abandoned in the middle of a background read
+            try (InputStream in = StreamingIO.input(file)) {
+                assertEquals(size == 0 ? -1 : expected[0] & 0xff, in.read());
+            }
+        }
+    }
+
+    @Test
+    void closed(@TempDir File data) throws IOException {
+        final Path file = new File(data, "table").toPath();
+        final OutputStream out = StreamingIO.output(file);
+        out.write(1);
+        out.close();
+        out.close();
+        assertThrows(IOException.class, () -> out.write(2));
+
+        final InputStream in = StreamingIO.input(file);
+        assertEquals(1, in.read());
+        in.close();
+        assertThrows(IOException.class, in::read);
+    }
+
+    private static void write(
+            final OutputStream out,
+            final byte[] bytes,
+            final int size) throws IOException {
+        out.write(bytes, 0, size / 2);
+        out.write(bytes, size / 2, size - size / 2);
+    }
+
+    private static byte[] read(final InputStream in) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final byte[] chunk = new byte[1000];
+        int n;
+        while ((n = in.read(chunk)) >= 0) {
+            result.write(chunk, 0, n);
+        }
+        assertEquals(-1, in.read());
+        return result.toByteArray();
+    }
+}